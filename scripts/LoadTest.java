@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator used by loadtest.sh when h2load is not installed. Requires JDK 11+
+ * and runs as a single source file: java LoadTest.java requests concurrency url h1|h2c
+ */
+public class LoadTest {
+
+  public static void main(String[] args) throws Exception {
+    int requests = Integer.parseInt(args[0]);
+    int concurrency = Integer.parseInt(args[1]);
+    URI uri = URI.create(args[2]);
+    boolean http2 = args[3].equals("h2c");
+
+    HttpClient client = HttpClient.newBuilder()
+      .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+      .build();
+    HttpRequest request = HttpRequest.newBuilder(uri).build();
+
+    // Open the first connection (and upgrade it to h2c) before measuring
+    client.send(request, HttpResponse.BodyHandlers.discarding());
+
+    long[] latencies = new long[requests];
+    AtomicInteger errors = new AtomicInteger();
+    Semaphore inFlight = new Semaphore(concurrency);
+    CountDownLatch done = new CountDownLatch(requests);
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      int n = i;
+      inFlight.acquire();
+      long sent = System.nanoTime();
+      client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+        .whenComplete((response, failure) -> {
+          latencies[n] = System.nanoTime() - sent;
+          if (failure != null || response.statusCode() != 200
+            || response.version() != client.version()) {
+            errors.incrementAndGet();
+          }
+          inFlight.release();
+          done.countDown();
+        });
+    }
+    done.await();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    Arrays.sort(latencies);
+    System.out.printf("%-8s requests=%d errors=%d connections=%s req/s=%.0f "
+        + "p50=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms%n",
+      http2 ? "h2c" : "HTTP/1.1", requests, errors.get(), connections(uri.getPort()),
+      requests / seconds, millis(latencies, 0.5), millis(latencies, 0.99),
+      millis(latencies, 0.999), latencies[requests - 1] / 1e6);
+  }
+
+  private static double millis(long[] sorted, double percentile) {
+    return sorted[(int) Math.ceil(percentile * sorted.length) - 1] / 1e6;
+  }
+
+  /**
+   * Established connections to the given port, which includes the pooled connections
+   * of this client. Only available on Linux.
+   */
+  private static String connections(int port) {
+    String remote = String.format(":%04X ", port);
+    long count = 0;
+    for (String table : new String[] {"/proc/net/tcp", "/proc/net/tcp6"}) {
+      Path path = Paths.get(table);
+      if (!Files.exists(path)) {
+        return "n/a";
+      }
+      try {
+        count += Files.readAllLines(path).stream()
+          .map(line -> line.trim().split("\\s+"))
+          .filter(fields -> fields.length > 3 && (fields[2] + " ").endsWith(remote)
+            && fields[3].equals("01"))
+          .count();
+      } catch (IOException e) {
+        return "n/a";
+      }
+    }
+    return Long.toString(count);
+  }
+}
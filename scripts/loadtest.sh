@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+# Compares HTTP/1.1 and h2c against a running server started with
+#   ./gradlew server -Daddressbook.http2=true
+#
+# Usage: scripts/loadtest.sh [requests] [concurrency] [url]
+#
+# Uses h2load (nghttp2) when available, otherwise LoadTest.java on a JDK 11+
+# (set JAVA to choose the java binary). HTTP/1.1 opens one connection per
+# concurrent request, h2c multiplexes all of them as streams over one connection.
+set -euo pipefail
+
+REQUESTS=${1:-10000}
+CONCURRENCY=${2:-100}
+URL=${3:-http://localhost:8080/contacts/person/1}
+
+if command -v h2load > /dev/null; then
+  echo "== HTTP/1.1: ${CONCURRENCY} connections"
+  h2load --h1 -n "${REQUESTS}" -c "${CONCURRENCY}" "${URL}"
+  echo "== h2c: 1 connection, ${CONCURRENCY} concurrent streams"
+  h2load -n "${REQUESTS}" -c 1 -m "${CONCURRENCY}" "${URL}"
+else
+  LOAD_TEST="$(dirname "$0")/LoadTest.java"
+  # Separate JVMs so that connections pooled by the first run are not counted by the second
+  "${JAVA:-java}" "${LOAD_TEST}" "${REQUESTS}" "${CONCURRENCY}" "${URL}" h1
+  "${JAVA:-java}" "${LOAD_TEST}" "${REQUESTS}" "${CONCURRENCY}" "${URL}" h2c
+fi
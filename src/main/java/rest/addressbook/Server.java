@@ -3,19 +3,78 @@ package rest.addressbook;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
 import org.glassfish.grizzly.Grizzly;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http2.Http2AddOn;
+import org.glassfish.grizzly.http2.Http2Configuration;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import rest.addressbook.config.ApplicationConfig;
+import rest.addressbook.config.ServerStatus;
 import rest.addressbook.domain.AddressBook;
 import rest.addressbook.domain.Person;
 
 public class Server {
   private static final Logger LOGGER = Grizzly.logger(Server.class);
 
+  /**
+   * Handler for records logged by the shutdown hook. It is not attached to any logger,
+   * so the concurrent reset of the logging configuration on exit does not close it.
+   */
+  private static final Handler SHUTDOWN_HANDLER = new ConsoleHandler();
+
+  /**
+   * System property with the seconds that in-flight requests are given to complete
+   * on shutdown.
+   */
+  private static final String GRACE_PERIOD_PROPERTY = "addressbook.shutdown.grace";
+
+  /**
+   * Default grace period in seconds.
+   */
+  private static final long GRACE_PERIOD = 10;
+
+  /**
+   * System property with the seconds that readiness probes are given to observe the
+   * 503 before the listener stops accepting connections.
+   */
+  private static final String READINESS_DRAIN_PROPERTY = "addressbook.shutdown.drain";
+
+  /**
+   * Default readiness drain in seconds.
+   */
+  private static final long READINESS_DRAIN = 5;
+
+  /**
+   * System property with the rounds of requests issued against the service before
+   * it becomes ready.
+   */
+  private static final String WARM_UP_ROUNDS_PROPERTY = "addressbook.warmup.rounds";
+
+  /**
+   * Default rounds of warm up requests.
+   */
+  private static final int WARM_UP_ROUNDS = 200;
+
+  /**
+   * System property that enables cleartext HTTP/2 (h2c) next to HTTP/1.1.
+   */
+  private static final String HTTP2_PROPERTY = "addressbook.http2";
+
   public static void main(String[] args) {
     LOGGER.setLevel(Level.FINER);
     AddressBook ab = new AddressBook();
@@ -31,20 +90,179 @@ public class Server {
     ab.getPersonList().add(juan);
 
     URI uri = UriBuilder.fromUri("http://localhost/").port(8080).build();
+    ServerStatus status = new ServerStatus();
     HttpServer server = GrizzlyHttpServerFactory.createHttpServer(uri,
-      new ApplicationConfig(ab));
-
+      new ApplicationConfig(ab, status), false);
+    if (Boolean.getBoolean(HTTP2_PROPERTY)) {
+      enableHttp2(server);
+    }
 
-    LOGGER.info("Press 's'+'enter' to shutdown now the server...");
-    try (Scanner scan = new Scanner(System.in)) {
+    try {
       server.start();
-      while (!scan.nextLine().equals("s")) { }
     } catch (IOException ioe) {
       LOGGER.log(Level.SEVERE, ioe.toString(), ioe);
+      System.exit(1);
+    }
+
+    // SIGTERM, SIGINT and System.exit all end up here
+    long drain = Long.getLong(READINESS_DRAIN_PROPERTY, READINESS_DRAIN);
+    long gracePeriod = Long.getLong(GRACE_PERIOD_PROPERTY, GRACE_PERIOD);
+    Runtime.getRuntime().addShutdownHook(new Thread(
+      () -> shutdown(server, status, drain, gracePeriod), "addressbook-shutdown"));
+
+    // A node that cannot serve its own requests must not receive traffic
+    if (!warmUp(uri, Integer.getInteger(WARM_UP_ROUNDS_PROPERTY, WARM_UP_ROUNDS))) {
+      LOGGER.severe("Warm up failed, the server will not become ready");
+      System.exit(1);
+    }
+    status.setReady(true);
+    LOGGER.info("Server ready");
+
+    LOGGER.info("Press 's'+'enter' or send SIGTERM to shutdown the server...");
+    try (Scanner scan = new Scanner(System.in)) {
+      while (scan.hasNextLine()) {
+        if (scan.nextLine().equals("s")) {
+          System.exit(0);
+        }
+      }
+    }
+    // No console attached: keep serving until a signal arrives
+    try {
+      Thread.currentThread().join();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Registers the HTTP/2 add-on on every listener. HTTP/1.1 clients are still served
+   * as before, while h2c clients (prior knowledge or "Upgrade: h2c") multiplex their
+   * requests as streams over a single connection. The warm up only goes through
+   * HTTP/1.1, so the HTTP/2 framing and HPACK code is still cold for the first h2c
+   * requests; the application paths behind it are shared and warm.
+   *
+   * @param server the server, not started yet
+   */
+  static void enableHttp2(HttpServer server) {
+    Http2AddOn http2 = new Http2AddOn(Http2Configuration.builder().build());
+    for (NetworkListener listener : server.getListeners()) {
+      listener.registerAddOn(http2);
+    }
+    LOGGER.info("HTTP/2 (h2c) enabled");
+  }
+
+  /**
+   * Exercises the JSON provider and the controller paths through the HTTP stack
+   * so that the first real requests do not pay class loading and initialization
+   * costs. The default rounds stay below the JIT compile thresholds; raise
+   * {@value #WARM_UP_ROUNDS_PROPERTY} to a few thousands to get the hot paths compiled.
+   * Only safe requests are issued, hence the address book is not modified.
+   *
+   * @param uri    the base URI of the running server
+   * @param rounds the rounds of requests to issue
+   * @return true if every request was answered as expected.
+   */
+  private static boolean warmUp(URI uri, int rounds) {
+    LOGGER.info("Warming up with " + rounds + " rounds");
+    Client client = ClientBuilder.newClient();
+    try {
+      for (int i = 0; i < rounds; i++) {
+        Response response = client.target(uri).path("contacts")
+          .request(MediaType.APPLICATION_JSON).get();
+        if (response.getStatus() != Status.OK.getStatusCode()) {
+          LOGGER.warning("Warm up got " + response.getStatus() + " from /contacts");
+          return false;
+        }
+        response.readEntity(AddressBook.class);
+        if (isServerError(client.target(uri).path("contacts/person/1")
+          .request(MediaType.APPLICATION_JSON).get())
+          || isServerError(client.target(uri).path("contacts/person/0")
+          .request(MediaType.APPLICATION_JSON).get())) {
+          LOGGER.warning("Warm up got a server error from /contacts/person");
+          return false;
+        }
+      }
+      return true;
+    } catch (RuntimeException re) {
+      LOGGER.log(Level.WARNING, "Warm up failed: " + re, re);
+      return false;
     } finally {
-      LOGGER.info("Shutting now");
-      server.shutdownNow();
-      LOGGER.info("Server stopped");
+      client.close();
+    }
+  }
+
+  /**
+   * Discards the entity of a warm up response.
+   *
+   * @param response a response of the running server
+   * @return true if the server failed to answer the request.
+   */
+  private static boolean isServerError(Response response) {
+    boolean serverError = response.getStatusInfo().getFamily() == Status.Family.SERVER_ERROR;
+    response.close();
+    return serverError;
+  }
+
+  /**
+   * Stops reporting readiness and, if the server was ready, keeps serving for
+   * {@code drain} seconds so that probes see the 503. Then stops accepting connections
+   * and waits up to {@code gracePeriod} seconds for in-flight requests before forcing
+   * the shutdown.
+   *
+   * @param server      the server to stop
+   * @param status      the status reported by the health probes
+   * @param drain       seconds to keep serving after readiness is withdrawn
+   * @param gracePeriod seconds given to in-flight requests
+   * @return true if every in-flight request completed, false if the server was forced down.
+   */
+  static boolean shutdown(HttpServer server, ServerStatus status, long drain,
+                          long gracePeriod) {
+    logOnShutdown(Level.INFO, "Shutting down gracefully", null);
+    boolean wasReady = status.shutdown();
+    try {
+      if (wasReady) {
+        TimeUnit.SECONDS.sleep(drain);
+      }
+      // Grizzly's own grace period completes normally even when it forces the shutdown
+      server.shutdown().get(gracePeriod, TimeUnit.SECONDS);
+      logOnShutdown(Level.INFO, "In-flight requests drained, server stopped", null);
+      return true;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      forceShutdown(server, ie);
+    } catch (ExecutionException | TimeoutException e) {
+      forceShutdown(server, e);
     }
+    return false;
+  }
+
+  /**
+   * Stops the server dropping any request still in flight.
+   *
+   * @param server the server to stop
+   * @param cause  why the graceful shutdown did not complete
+   */
+  private static void forceShutdown(HttpServer server, Exception cause) {
+    logOnShutdown(Level.WARNING, "Graceful shutdown failed: " + cause, cause);
+    server.shutdownNow();
+    logOnShutdown(Level.WARNING, "Server forced down, in-flight requests may have been dropped",
+      null);
+  }
+
+  /**
+   * Logs from the shutdown hook, where the handlers of {@link #LOGGER} may be gone.
+   *
+   * @param level   the level of the record
+   * @param message the message of the record
+   * @param thrown  the cause of the record, or null
+   */
+  private static void logOnShutdown(Level level, String message, Throwable thrown) {
+    LogRecord record = new LogRecord(level, message);
+    record.setLoggerName(LOGGER.getName());
+    record.setSourceClassName(Server.class.getName());
+    record.setSourceMethodName("shutdown");
+    record.setThrown(thrown);
+    SHUTDOWN_HANDLER.publish(record);
+    SHUTDOWN_HANDLER.flush();
   }
 }
@@ -5,6 +5,7 @@ import org.glassfish.jersey.internal.inject.AbstractBinder;
 import org.glassfish.jersey.server.ResourceConfig;
 import rest.addressbook.domain.AddressBook;
 import rest.addressbook.web.AddressBookController;
+import rest.addressbook.web.HealthController;
 
 public class ApplicationConfig extends ResourceConfig {
 
@@ -17,18 +18,30 @@ public class ApplicationConfig extends ResourceConfig {
 
 
   /**
-   * Main constructor
+   * Creates a configuration that reports itself as ready.
    *
    * @param addressBook a provided address book
    */
   public ApplicationConfig(final AddressBook addressBook) {
+    this(addressBook, new ServerStatus(true));
+  }
+
+  /**
+   * Main constructor
+   *
+   * @param addressBook a provided address book
+   * @param status      the status reported by the health probes
+   */
+  public ApplicationConfig(final AddressBook addressBook, final ServerStatus status) {
     register(AddressBookController.class);
+    register(HealthController.class);
     register(MOXyJsonProvider.class);
     register(new AbstractBinder() {
 
       @Override
       protected void configure() {
         bind(addressBook).to(AddressBook.class);
+        bind(status).to(ServerStatus.class);
       }
     });
   }
@@ -0,0 +1,58 @@
+package rest.addressbook.config;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The lifecycle status of the service as seen by health probes. This class is thread safe.
+ */
+public class ServerStatus {
+
+  private enum State { STARTING, READY, SHUTTING_DOWN }
+
+  private final AtomicReference<State> state;
+
+  /**
+   * Creates a status that is not ready to serve requests.
+   */
+  public ServerStatus() {
+    this(false);
+  }
+
+  /**
+   * Main constructor
+   *
+   * @param ready the initial readiness of the service
+   */
+  public ServerStatus(boolean ready) {
+    this.state = new AtomicReference<>(ready ? State.READY : State.STARTING);
+  }
+
+  /**
+   * Whether the service has been warmed up and is not shutting down.
+   *
+   * @return true if the service should receive traffic.
+   */
+  public boolean isReady() {
+    return state.get() == State.READY;
+  }
+
+  /**
+   * Changes the readiness reported to probes. It has no effect once {@link #shutdown()}
+   * has been called.
+   *
+   * @param ready true once warmed up, false to stop receiving traffic for a while.
+   */
+  public void setReady(boolean ready) {
+    state.updateAndGet(current -> current == State.SHUTTING_DOWN ? current
+      : ready ? State.READY : State.STARTING);
+  }
+
+  /**
+   * Stops reporting readiness for good.
+   *
+   * @return true if the service was ready, i.e. probes may still be routing traffic to it.
+   */
+  public boolean shutdown() {
+    return state.getAndSet(State.SHUTTING_DOWN) == State.READY;
+  }
+}
@@ -0,0 +1,53 @@
+package rest.addressbook.web;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import rest.addressbook.config.ServerStatus;
+
+
+/**
+ * Liveness and readiness probes of the service.
+ */
+@Path("/health")
+public class HealthController {
+
+  /**
+   * The (shared) lifecycle status of the service.
+   */
+  @Inject
+  ServerStatus status;
+
+  /**
+   * A GET /health/live request succeeds while the process is able to answer requests.
+   *
+   * @return 200 always.
+   */
+  @GET
+  @Path("/live")
+  @Produces(MediaType.TEXT_PLAIN)
+  public Response live() {
+    return Response.ok("UP").build();
+  }
+
+  /**
+   * A GET /health/ready request succeeds once the service is warmed up and
+   * until it starts shutting down.
+   *
+   * @return 200 if the service is ready, 503 otherwise.
+   */
+  @GET
+  @Path("/ready")
+  @Produces(MediaType.TEXT_PLAIN)
+  public Response ready() {
+    if (status.isReady()) {
+      return Response.ok("UP").build();
+    }
+    return Response.status(Status.SERVICE_UNAVAILABLE).entity("DOWN").build();
+  }
+
+}
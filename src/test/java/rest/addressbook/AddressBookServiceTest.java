@@ -1,19 +1,41 @@
 package rest.addressbook;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import java.io.IOException;
+import java.net.Socket;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.junit.After;
 import org.junit.Test;
 import rest.addressbook.config.ApplicationConfig;
+import rest.addressbook.config.ServerStatus;
 import rest.addressbook.domain.AddressBook;
 import rest.addressbook.domain.Person;
 
@@ -309,10 +331,224 @@ public class AddressBookServiceTest {
     assertEquals(404, response.getStatus());
   }
 
+  @Test
+  public void healthProbes() throws IOException {
+    // Prepare server
+    ServerStatus status = new ServerStatus();
+    launchServer(new ApplicationConfig(new AddressBook(), status));
+
+    // Alive but not ready yet
+    Client client = ClientBuilder.newClient();
+    Response response = client.target("http://localhost:8282/health/live")
+      .request().get();
+    assertEquals(200, response.getStatus());
+    response = client.target("http://localhost:8282/health/ready")
+      .request().get();
+    assertEquals(503, response.getStatus());
+
+    // Ready once the status flips
+    status.setReady(true);
+    response = client.target("http://localhost:8282/health/ready")
+      .request().get();
+    assertEquals(200, response.getStatus());
+
+    // Not ready again while shutting down
+    status.shutdown();
+    response = client.target("http://localhost:8282/health/ready")
+      .request().get();
+    assertEquals(503, response.getStatus());
+
+    // A late warm up cannot bring readiness back
+    status.setReady(true);
+    response = client.target("http://localhost:8282/health/ready")
+      .request().get();
+    assertEquals(503, response.getStatus());
+  }
+
+  @Test
+  public void shutdownDrainsInFlightRequests() throws Exception {
+    // Prepare server
+    ServerStatus status = new ServerStatus(true);
+    ApplicationConfig config = new ApplicationConfig(new AddressBook(), status);
+    config.register(SlowController.class);
+    launchServer(config);
+
+    // A request shorter than the grace period is in flight
+    SlowController.started = new CountDownLatch(1);
+    Client client = ClientBuilder.newClient();
+    Future<Response> inFlight = client.target("http://localhost:8282/slow")
+      .queryParam("millis", 1000).request().async().get();
+    assertTrue(SlowController.started.await(5, TimeUnit.SECONDS));
+
+    // Shutdown in the background and verify that new connections are refused
+    Future<Boolean> drained = CompletableFuture
+      .supplyAsync(() -> Server.shutdown(server, status, 0, 5));
+    assertConnectionRefused();
+
+    // The in-flight request completes and the shutdown is graceful
+    assertEquals(200, inFlight.get(5, TimeUnit.SECONDS).getStatus());
+    assertTrue(drained.get(10, TimeUnit.SECONDS));
+    assertFalse(status.isReady());
+  }
+
+  @Test
+  public void shutdownForcesRequestsPastGracePeriod() throws Exception {
+    // Prepare server
+    ServerStatus status = new ServerStatus(true);
+    ApplicationConfig config = new ApplicationConfig(new AddressBook(), status);
+    config.register(SlowController.class);
+    launchServer(config);
+
+    // A request longer than the grace period is in flight
+    SlowController.started = new CountDownLatch(1);
+    Client client = ClientBuilder.newClient();
+    Future<Response> inFlight = client.target("http://localhost:8282/slow")
+      .queryParam("millis", 10000).request().async().get();
+    assertTrue(SlowController.started.await(5, TimeUnit.SECONDS));
+
+    // The shutdown gives up after the grace period
+    long start = System.nanoTime();
+    assertFalse(Server.shutdown(server, status, 0, 1));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+    // And the request is cut off
+    try {
+      inFlight.get(5, TimeUnit.SECONDS);
+      fail("The request should have been cut off");
+    } catch (ExecutionException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test only resource that answers after the given milliseconds.
+   */
+  @Path("/slow")
+  public static class SlowController {
+
+    static volatile CountDownLatch started;
+
+    @GET
+    public String slow(@QueryParam("millis") long millis) throws InterruptedException {
+      started.countDown();
+      Thread.sleep(millis);
+      return "done";
+    }
+  }
+
+  private static void assertConnectionRefused() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < deadline) {
+      try (Socket socket = new Socket("localhost", 8282)) {
+        Thread.sleep(50);
+      } catch (IOException e) {
+        return;
+      }
+    }
+    fail("New connections are still accepted");
+  }
+
+  @Test
+  public void http2PriorKnowledge() throws IOException {
+    // Prepare server
+    launchHttp2Server(new AddressBook());
+
+    // Request the address book over h2c without upgrade
+    OkHttpClient client = http2Client();
+    try (okhttp3.Response response = client.newCall(new Request.Builder()
+      .url("http://localhost:8282/contacts").build()).execute()) {
+      assertEquals(200, response.code());
+      assertEquals(Protocol.H2_PRIOR_KNOWLEDGE, response.protocol());
+      assertEquals(MediaType.APPLICATION_JSON, response.header("Content-Type"));
+    } finally {
+      close(client);
+    }
+  }
+
+  @Test
+  public void http2MultiplexesRequests() throws Exception {
+    // Prepare server
+    AddressBook ab = new AddressBook();
+    Person salvador = new Person();
+    salvador.setName("Salvador");
+    salvador.setId(ab.nextId());
+    ab.getPersonList().add(salvador);
+    launchHttp2Server(ab);
+
+    OkHttpClient client = http2Client();
+    try {
+      // Open the connection
+      client.newCall(new Request.Builder().url("http://localhost:8282/contacts").build())
+        .execute().close();
+
+      // Concurrent requests, half of them for a missing person
+      List<CompletableFuture<Integer>> statuses = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        statuses.add(enqueue(client, "http://localhost:8282/contacts/person/" + (i % 2 + 1)));
+      }
+      for (int i = 0; i < statuses.size(); i++) {
+        assertEquals(i % 2 == 0 ? 200 : 404,
+          statuses.get(i).get(5, TimeUnit.SECONDS).intValue());
+      }
+
+      // All of them were streams of the same connection
+      assertEquals(1, client.connectionPool().connectionCount());
+    } finally {
+      close(client);
+    }
+  }
+
+  /**
+   * A h2c client that fails on GOAWAY, RST_STREAM or a server that stops answering.
+   */
+  private static OkHttpClient http2Client() {
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequestsPerHost(20);
+    return new OkHttpClient.Builder()
+      .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+      .dispatcher(dispatcher)
+      .callTimeout(5, TimeUnit.SECONDS)
+      .build();
+  }
+
+  private static CompletableFuture<Integer> enqueue(OkHttpClient client, String url) {
+    CompletableFuture<Integer> status = new CompletableFuture<>();
+    client.newCall(new Request.Builder().url(url).build()).enqueue(new Callback() {
+
+      @Override
+      public void onFailure(Call call, IOException e) {
+        status.completeExceptionally(e);
+      }
+
+      @Override
+      public void onResponse(Call call, okhttp3.Response response) {
+        try (okhttp3.Response closed = response) {
+          status.complete(closed.code());
+        }
+      }
+    });
+    return status;
+  }
+
+  private static void close(OkHttpClient client) {
+    client.dispatcher().executorService().shutdown();
+    client.connectionPool().evictAll();
+  }
+
+  private void launchHttp2Server(AddressBook ab) throws IOException {
+    URI uri = UriBuilder.fromUri("http://localhost/").port(8282).build();
+    server = GrizzlyHttpServerFactory.createHttpServer(uri, new ApplicationConfig(ab), false);
+    Server.enableHttp2(server);
+    server.start();
+  }
+
   private void launchServer(AddressBook ab) throws IOException {
+    launchServer(new ApplicationConfig(ab));
+  }
+
+  private void launchServer(ApplicationConfig config) throws IOException {
     URI uri = UriBuilder.fromUri("http://localhost/").port(8282).build();
-    server = GrizzlyHttpServerFactory.createHttpServer(uri,
-      new ApplicationConfig(ab));
+    server = GrizzlyHttpServerFactory.createHttpServer(uri, config);
     server.start();
   }
 